@@ -0,0 +1,330 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.tools.security;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.springframework.security.core.GrantedAuthority;
+
+import org.apache.geode.security.ResourcePermission;
+
+/**
+ * Inverted index from each granted {@link ResourcePermission} to the authenticated principals
+ * holding it, updated incrementally every time a principal is authenticated.
+ * Answers "who can access X?" by only checking the distinct permissions granted (instead of every
+ * principal), and allows revoking permissions from every cached principal at once.
+ * Revocations are checked against the requested permission, so they also apply to principals
+ * holding broader permissions, and they're sticky: principals authenticated afterwards are also
+ * affected, until the revocation is explicitly restored.
+ * Principals are keyed by name, so authorization follows the latest successful login for that
+ * name. Principals are removed when a later authentication attempt for them is rejected, or
+ * explicitly (individually or once idle for a while) through the management interface.
+ */
+public class GeodePermissionIndex implements GeodePermissionIndexMXBean {
+  public static final String OBJECT_NAME = "org.apache.geode.tools.security:type=GeodePermissionIndex";
+  public static final String JMX_REGISTRATION_ERROR = "The permission index could not be registered within the MBeanServer.";
+  private static final ResourcePermission[] NO_PERMISSIONS = new ResourcePermission[0];
+  private static final Object REGISTRATION_LOCK = new Object();
+  private static GeodePermissionIndex registeredIndex;
+  private final GeodeAuthoritiesMapper authoritiesMapper = new GeodeAuthoritiesMapper();
+  private volatile ResourcePermission[] revokedPermissions = NO_PERMISSIONS;
+  private final Map<String, ResourcePermission[]> grantedByPrincipal = new ConcurrentHashMap<>();
+  private final Map<String, ResourcePermission[]> effectiveByPrincipal = new ConcurrentHashMap<>();
+  private final Map<ResourcePermission, Set<String>> principalsByPermission = new ConcurrentHashMap<>();
+  private final Map<String, Long> lastAuthentication = new ConcurrentHashMap<>();
+
+  /**
+   * @return {@code true} if the permission is implied by any of the revoked permissions.
+   */
+  public boolean isRevoked(ResourcePermission permission) {
+    for (ResourcePermission revokedPermission : revokedPermissions) {
+      if (revokedPermission.implies(permission)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private void refresh(String principal) {
+    ResourcePermission[] granted = grantedByPrincipal.get(principal);
+
+    if (granted != null) {
+      List<ResourcePermission> effective = new ArrayList<>(granted.length);
+      for (ResourcePermission permission : granted) {
+        if (!isRevoked(permission)) {
+          effective.add(permission);
+        }
+      }
+
+      effectiveByPrincipal.put(principal, effective.toArray(NO_PERMISSIONS));
+    }
+  }
+
+  private void unindex(String principal, ResourcePermission[] permissions) {
+    for (ResourcePermission permission : permissions) {
+      principalsByPermission.computeIfPresent(permission, (key, principals) -> {
+        principals.remove(principal);
+        return principals.isEmpty() ? null : principals;
+      });
+    }
+  }
+
+  /**
+   * Principals holding a granted permission that is either narrower or broader than the given
+   * one, whether currently revoked or not.
+   */
+  private Set<String> principalsGranted(ResourcePermission permission) {
+    Set<String> principals = new HashSet<>();
+    principalsByPermission.forEach((granted, holders) -> {
+      if (permission.implies(granted) || granted.implies(permission)) {
+        principals.addAll(holders);
+      }
+    });
+
+    return principals;
+  }
+
+  /**
+   * Indexes the {@link GeodeGrantedAuthority} instances of the principal, replacing any
+   * previously indexed ones.
+   */
+  public synchronized void update(String principal, Collection<? extends GrantedAuthority> authorities) {
+    List<ResourcePermission> granted = new ArrayList<>(authorities.size());
+    authorities.forEach(authority -> {
+      if (authority instanceof GeodeGrantedAuthority) {
+        granted.add(((GeodeGrantedAuthority) authority).getResourcePermission());
+      }
+    });
+
+    ResourcePermission[] previous = grantedByPrincipal.put(principal, granted.toArray(NO_PERMISSIONS));
+    if (previous != null) {
+      unindex(principal, previous);
+    }
+
+    granted.forEach(permission -> principalsByPermission.computeIfAbsent(permission, key -> ConcurrentHashMap.newKeySet()).add(principal));
+    lastAuthentication.put(principal, System.currentTimeMillis());
+    refresh(principal);
+  }
+
+  /**
+   * Removes the principal from the index.
+   * @return {@code true} if the principal was indexed.
+   */
+  public synchronized boolean remove(String principal) {
+    if (principal == null) {
+      return false;
+    }
+
+    ResourcePermission[] previous = grantedByPrincipal.remove(principal);
+    effectiveByPrincipal.remove(principal);
+    lastAuthentication.remove(principal);
+
+    if (previous != null) {
+      unindex(principal, previous);
+    }
+
+    return previous != null;
+  }
+
+  /**
+   * Removes the principals that haven't been authenticated within the given amount of time.
+   * @return the number of principals removed.
+   */
+  public synchronized int removeIdle(long idleMillis) {
+    long threshold = System.currentTimeMillis() - idleMillis;
+    List<String> idle = new ArrayList<>();
+    lastAuthentication.forEach((principal, timestamp) -> {
+      if (timestamp < threshold) {
+        idle.add(principal);
+      }
+    });
+
+    idle.forEach(this::remove);
+
+    return idle.size();
+  }
+
+  /**
+   * @return the permissions currently in effect for the principal, or {@code null} if the
+   * principal hasn't been indexed.
+   */
+  public ResourcePermission[] getPermissions(String principal) {
+    return effectiveByPrincipal.get(principal);
+  }
+
+  /**
+   * @return the principals currently allowed to access the given permission.
+   */
+  public Set<String> getPrincipals(ResourcePermission permission) {
+    Set<String> principals = new TreeSet<>();
+    if (isRevoked(permission)) {
+      return principals;
+    }
+
+    principalsByPermission.forEach((granted, holders) -> {
+      if (granted.implies(permission) && !isRevoked(granted)) {
+        principals.addAll(holders);
+      }
+    });
+
+    return principals;
+  }
+
+  /**
+   * Revokes the permission, and every narrower permission implied by it, from every principal,
+   * regardless of how broad the permissions granted are.
+   * @return the number of principals affected.
+   */
+  public synchronized int revoke(ResourcePermission permission) {
+    if (!Arrays.asList(revokedPermissions).contains(permission)) {
+      ResourcePermission[] revoked = Arrays.copyOf(revokedPermissions, revokedPermissions.length + 1);
+      revoked[revoked.length - 1] = permission;
+      revokedPermissions = revoked;
+    }
+
+    Set<String> affected = principalsGranted(permission);
+    affected.forEach(this::refresh);
+
+    return affected.size();
+  }
+
+  /**
+   * Reverts a previous {@link #revoke(ResourcePermission)}.
+   * @return the number of principals affected.
+   */
+  public synchronized int restore(ResourcePermission permission) {
+    List<ResourcePermission> revoked = new ArrayList<>(Arrays.asList(revokedPermissions));
+    if (!revoked.remove(permission)) {
+      return 0;
+    }
+
+    revokedPermissions = revoked.toArray(NO_PERMISSIONS);
+
+    Set<String> affected = principalsGranted(permission);
+    affected.forEach(this::refresh);
+
+    return affected.size();
+  }
+
+  @Override
+  public int getPrincipalCount() {
+    return grantedByPrincipal.size();
+  }
+
+  @Override
+  public String[] getRevokedAuthorities() {
+    return Arrays.stream(revokedPermissions).map(ResourcePermission::toString).sorted().toArray(String[]::new);
+  }
+
+  @Override
+  public String[] listPrincipals(String authority) {
+    return getPrincipals(authoritiesMapper.parseAuthority(authority).getResourcePermission()).toArray(new String[0]);
+  }
+
+  @Override
+  public String[] listAuthorities(String principal) {
+    ResourcePermission[] permissions = getPermissions(principal);
+    if (permissions == null) {
+      return new String[0];
+    }
+
+    String[] authorities = new String[permissions.length];
+    for (int i = 0; i < permissions.length; i++) {
+      authorities[i] = permissions[i].toString();
+    }
+
+    return authorities;
+  }
+
+  @Override
+  public boolean removePrincipal(String principal) {
+    return remove(principal);
+  }
+
+  @Override
+  public int removeIdlePrincipals(long idleMinutes) {
+    return removeIdle(TimeUnit.MINUTES.toMillis(idleMinutes));
+  }
+
+  @Override
+  public int revoke(String authority) {
+    return revoke(authoritiesMapper.parseAuthority(authority).getResourcePermission());
+  }
+
+  @Override
+  public int restore(String authority) {
+    return restore(authoritiesMapper.parseAuthority(authority).getResourcePermission());
+  }
+
+  /**
+   * Registers the index within the platform MBeanServer, unless another index is already
+   * registered ({@link SpringSecurityManager} instances share a single index per JVM).
+   * @return {@code true} if this index is the registered one.
+   */
+  public boolean register() {
+    synchronized (REGISTRATION_LOCK) {
+      if (registeredIndex != null) {
+        return registeredIndex == this;
+      }
+
+      try {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        registeredIndex = this;
+
+        return true;
+      } catch (JMException jmException) {
+        throw new IllegalStateException(JMX_REGISTRATION_ERROR, jmException);
+      }
+    }
+  }
+
+  /**
+   * Removes the index from the platform MBeanServer, only if this is the registered index.
+   */
+  public void unregister() {
+    synchronized (REGISTRATION_LOCK) {
+      if (registeredIndex != this) {
+        return;
+      }
+
+      registeredIndex = null;
+      try {
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName(OBJECT_NAME);
+
+        if (mBeanServer.isRegistered(objectName)) {
+          mBeanServer.unregisterMBean(objectName);
+        }
+      } catch (JMException ignore) {
+        // Already gone, nothing else to do.
+      }
+    }
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.tools.security;
+
+/**
+ * JMX management interface of the {@link GeodePermissionIndex}.
+ * Authorities are expressed using the same format parsed by the {@link GeodeAuthoritiesMapper},
+ * that is {@code RESOURCE:OPERATION[:REGION[:KEY]]}.
+ */
+public interface GeodePermissionIndexMXBean {
+
+  /**
+   * @return the number of authenticated principals currently indexed.
+   */
+  int getPrincipalCount();
+
+  /**
+   * @return the authorities currently revoked from every principal.
+   */
+  String[] getRevokedAuthorities();
+
+  /**
+   * @param authority the permission to check, like {@code DATA:WRITE:RegionX}.
+   * @return the principals that are currently allowed to access the given permission.
+   */
+  String[] listPrincipals(String authority);
+
+  /**
+   * @param principal the principal name.
+   * @return the authorities currently in effect for the principal.
+   */
+  String[] listAuthorities(String principal);
+
+  /**
+   * Removes the principal from the index, until it authenticates again.
+   * @param principal the principal name.
+   * @return {@code true} if the principal was indexed.
+   */
+  boolean removePrincipal(String principal);
+
+  /**
+   * Removes the principals that haven't authenticated within the given amount of minutes.
+   * @param idleMinutes the amount of minutes.
+   * @return the number of principals removed.
+   */
+  int removeIdlePrincipals(long idleMinutes);
+
+  /**
+   * Revokes the authority, and every narrower authority implied by it, from every principal,
+   * including those granted a broader authority.
+   * @param authority the permission to revoke, like {@code CLUSTER:MANAGE}.
+   * @return the number of principals affected.
+   */
+  int revoke(String authority);
+
+  /**
+   * Reverts a previous {@link #revoke(String)}.
+   * @param authority the permission previously revoked.
+   * @return the number of principals affected.
+   */
+  int restore(String authority);
+}
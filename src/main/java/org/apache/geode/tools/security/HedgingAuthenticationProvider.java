@@ -0,0 +1,449 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.tools.security;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+
+/**
+ * Composite {@link AuthenticationProvider} that spreads the authentication requests across a set of
+ * equivalent (replicated) backends, like several replicas of the same LDAP directory.
+ * Every request is sent to the backend with the lowest observed latency first and, if no answer
+ * has been received once the 95th percentile latency of that backend has elapsed, a hedged request
+ * is sent to the next backend; whichever answers first wins.
+ * Backends that repeatedly fail, or are still running past their own hedge deadline when the
+ * request is answered by somebody else, are excluded (circuit-broken) for a configurable amount
+ * of time, so a stalled replica can't block the Geode acceptor threads.
+ * Once that time has elapsed, a single request is sent to the excluded backend as primary (probe):
+ * the backend is ordered by latency again if it answers, or excluded once more otherwise.
+ */
+public class HedgingAuthenticationProvider implements AuthenticationProvider, DisposableBean {
+  public static final String NO_BACKENDS_CONFIGURED_ERROR = "At least one AuthenticationProvider must be configured.";
+  public static final String TIMEOUT_ERROR = "No backend answered the authentication request within ";
+  public static final String INTERRUPTED_ERROR = "Interrupted while waiting for the authentication backends.";
+  private static final int MAX_CONCURRENT_ATTEMPTS = 2;
+  private final List<Backend> backends;
+  private final ExecutorService executorService;
+  private long minHedgeDelayMillis = 20;
+  private long maxHedgeDelayMillis = 1000;
+  private long timeoutMillis = 5000;
+  private int failureThreshold = 3;
+  private long openCircuitMillis = 30000;
+
+  public HedgingAuthenticationProvider(List<AuthenticationProvider> providers) {
+    if ((providers == null) || (providers.isEmpty())) {
+      throw new IllegalArgumentException(NO_BACKENDS_CONFIGURED_ERROR);
+    }
+
+    this.backends = new ArrayList<>(providers.size());
+    providers.forEach(provider -> backends.add(new Backend(provider)));
+
+    AtomicInteger threadCounter = new AtomicInteger();
+    this.executorService = Executors.newCachedThreadPool(runnable -> {
+      Thread thread = new Thread(runnable, "HedgingAuthenticationProvider-" + threadCounter.incrementAndGet());
+      thread.setDaemon(true);
+
+      return thread;
+    });
+  }
+
+  public HedgingAuthenticationProvider(AuthenticationProvider... providers) {
+    this(Arrays.asList(providers));
+  }
+
+  public void setMinHedgeDelayMillis(long minHedgeDelayMillis) {
+    this.minHedgeDelayMillis = minHedgeDelayMillis;
+  }
+
+  public void setMaxHedgeDelayMillis(long maxHedgeDelayMillis) {
+    this.maxHedgeDelayMillis = maxHedgeDelayMillis;
+  }
+
+  public void setTimeoutMillis(long timeoutMillis) {
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  public void setFailureThreshold(int failureThreshold) {
+    this.failureThreshold = failureThreshold;
+  }
+
+  public void setOpenCircuitMillis(long openCircuitMillis) {
+    this.openCircuitMillis = openCircuitMillis;
+  }
+
+  List<Backend> getBackends() {
+    return backends;
+  }
+
+  /**
+   * Returns the backends supporting the authentication to use for the next request, fastest first.
+   * Circuit-broken backends are skipped unless there's nothing else left to try, those ready to be
+   * probed again go first.
+   */
+  List<Backend> orderedBackends(long now, Class<? extends Authentication> authentication) {
+    List<Backend> supporting = new ArrayList<>(backends.size());
+    List<Backend> available = new ArrayList<>(backends.size());
+    backends.forEach(backend -> {
+      if (backend.provider.supports(authentication)) {
+        supporting.add(backend);
+
+        if (backend.isAvailable(now, failureThreshold)) {
+          available.add(backend);
+        }
+      }
+    });
+
+    List<Backend> candidates = available.isEmpty() ? supporting : available;
+    candidates.sort(Comparator.comparingDouble(Backend::getLatencyEwma));
+
+    for (int i = 0; i < candidates.size(); i++) {
+      if (candidates.get(i).isHalfOpen(now, failureThreshold)) {
+        candidates.add(0, candidates.remove(i));
+        break;
+      }
+    }
+
+    return candidates;
+  }
+
+  long hedgeDelayNanos(Backend backend) {
+    long p95 = backend.getPercentile95();
+    long min = TimeUnit.MILLISECONDS.toNanos(minHedgeDelayMillis);
+    long max = TimeUnit.MILLISECONDS.toNanos(maxHedgeDelayMillis);
+
+    return (p95 < 0) ? max : Math.max(min, Math.min(max, p95));
+  }
+
+  @Override
+  public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+    long start = System.nanoTime();
+    long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    List<Backend> candidates = orderedBackends(start, authentication.getClass());
+    if (candidates.isEmpty()) {
+      return null;
+    }
+
+    CompletionService<Outcome> completionService = new ExecutorCompletionService<>(executorService);
+    Map<Future<Outcome>, Attempt> inFlight = new HashMap<>();
+    AuthenticationException lastFailure = null;
+    int next = 0;
+
+    try {
+      Backend first = candidates.get(next++);
+      Attempt primary = new Attempt(first, authentication, first.tryStartProbe(start, failureThreshold));
+      inFlight.put(completionService.submit(primary), primary);
+      long hedgeAt = primary.hedgeDeadline;
+
+      while (true) {
+        long now = System.nanoTime();
+        if (now >= deadline) {
+          break;
+        }
+
+        boolean canHedge = (next < candidates.size()) && (inFlight.size() < MAX_CONCURRENT_ATTEMPTS);
+        long waitUntil = canHedge ? Math.min(hedgeAt, deadline) : deadline;
+        Future<Outcome> completed = completionService.poll(Math.max(0, waitUntil - now), TimeUnit.NANOSECONDS);
+
+        if (completed == null) {
+          if (canHedge && (System.nanoTime() >= hedgeAt)) {
+            Attempt hedge = new Attempt(candidates.get(next++), authentication, false);
+            inFlight.put(completionService.submit(hedge), hedge);
+            hedgeAt = hedge.hedgeDeadline;
+          }
+
+          continue;
+        }
+
+        inFlight.remove(completed);
+        Outcome outcome = completed.get();
+
+        if (outcome.isDefinitive()) {
+          abandon(inFlight, false);
+
+          if (outcome.failure != null) {
+            throw outcome.failure;
+          }
+
+          return outcome.result;
+        }
+
+        if (outcome.failure != null) {
+          lastFailure = outcome.failure;
+        }
+
+        if (inFlight.isEmpty()) {
+          if (next >= candidates.size()) {
+            // Every backend either failed or couldn't handle the request.
+            if (lastFailure != null) {
+              throw lastFailure;
+            }
+
+            return null;
+          }
+
+          Attempt failover = new Attempt(candidates.get(next++), authentication, false);
+          inFlight.put(completionService.submit(failover), failover);
+          hedgeAt = failover.hedgeDeadline;
+        }
+      }
+    } catch (InterruptedException interruptedException) {
+      Thread.currentThread().interrupt();
+      abandon(inFlight, false);
+      throw new AuthenticationServiceException(INTERRUPTED_ERROR, interruptedException);
+    } catch (ExecutionException executionException) {
+      // Attempts never throw, outcomes always carry the failure instead.
+      abandon(inFlight, false);
+      throw new AuthenticationServiceException(executionException.getMessage(), executionException.getCause());
+    }
+
+    abandon(inFlight, true);
+    throw new AuthenticationServiceException(TIMEOUT_ERROR + timeoutMillis + "ms", lastFailure);
+  }
+
+  private void abandon(Map<Future<Outcome>, Attempt> inFlight, boolean timedOut) {
+    long now = System.nanoTime();
+    inFlight.forEach((future, attempt) -> {
+      attempt.abandon(now, timedOut);
+      future.cancel(true);
+    });
+  }
+
+  @Override
+  public boolean supports(Class<?> authentication) {
+    for (Backend backend : backends) {
+      if (backend.provider.supports(authentication)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  @Override
+  public void destroy() {
+    executorService.shutdownNow();
+  }
+
+  /**
+   * Result of a single attempt against a backend.
+   * Service failures (backend unreachable, internal errors, etc.) and {@code null} results (the
+   * backend can't handle the request) are not definitive and the request can be retried against
+   * another backend; everything else, including a rejection of the credentials, is the final
+   * answer.
+   */
+  private static class Outcome {
+    private final Authentication result;
+    private final AuthenticationException failure;
+    private final boolean definitive;
+
+    private Outcome(Authentication result, AuthenticationException failure, boolean definitive) {
+      this.result = result;
+      this.failure = failure;
+      this.definitive = definitive;
+    }
+
+    boolean isDefinitive() {
+      return definitive;
+    }
+  }
+
+  /**
+   * Single request sent to a backend, records the latency statistics once finished.
+   */
+  private class Attempt implements Callable<Outcome> {
+    private final Backend backend;
+    private final Authentication authentication;
+    private final boolean probe;
+    private final AtomicBoolean recorded = new AtomicBoolean();
+    private final long start = System.nanoTime();
+    private final long hedgeDeadline;
+
+    private Attempt(Backend backend, Authentication authentication, boolean probe) {
+      this.backend = backend;
+      this.authentication = authentication;
+      this.probe = probe;
+      this.hedgeDeadline = start + hedgeDelayNanos(backend);
+    }
+
+    /**
+     * The attempt lost the race or the whole request has given up on it.
+     * The elapsed time is only a lower bound of the real latency, so it's not recorded; the
+     * attempt counts as a failure for the circuit breaker only if it ran past its own hedge
+     * deadline or the whole request timed out, a hedge that simply started later is not penalized.
+     */
+    void abandon(long now, boolean timedOut) {
+      if (recorded.compareAndSet(false, true)) {
+        if (timedOut || (now - hedgeDeadline >= 0)) {
+          backend.recordFailure(now, failureThreshold, openCircuitMillis);
+        } else if (probe) {
+          // Nothing learned, let the next request probe the backend.
+          backend.endProbe();
+        }
+      }
+    }
+
+    @Override
+    public Outcome call() {
+      try {
+        Authentication result = backend.provider.authenticate(authentication);
+        if (recorded.compareAndSet(false, true)) {
+          backend.recordLatency(System.nanoTime() - start);
+          backend.recordSuccess();
+        }
+
+        return new Outcome(result, null, result != null);
+      } catch (AuthenticationServiceException serviceException) {
+        failed();
+        return new Outcome(null, serviceException, false);
+      } catch (AuthenticationException authenticationException) {
+        if (recorded.compareAndSet(false, true)) {
+          backend.recordLatency(System.nanoTime() - start);
+          backend.recordSuccess();
+        }
+
+        return new Outcome(null, authenticationException, true);
+      } catch (RuntimeException runtimeException) {
+        failed();
+        return new Outcome(null, new AuthenticationServiceException(runtimeException.getMessage(), runtimeException), false);
+      }
+    }
+
+    private void failed() {
+      if (recorded.compareAndSet(false, true)) {
+        backend.recordFailure(System.nanoTime(), failureThreshold, openCircuitMillis);
+      }
+    }
+  }
+
+  /**
+   * Latency statistics (exponentially weighted moving average and 95th percentile over the last
+   * {@link #SAMPLES} requests) and circuit breaker state of a single backend.
+   * The circuit is closed while there are less consecutive failures than the threshold, open until
+   * the configured time elapses, and half-open afterwards: a single request (the probe) is allowed,
+   * a success closes the circuit and resets the failures, a failure opens it again.
+   */
+  static class Backend {
+    private static final int SAMPLES = 64;
+    private static final double EWMA_ALPHA = 0.3;
+    private final AuthenticationProvider provider;
+    private final long[] samples = new long[SAMPLES];
+    private int sampleCount;
+    private int sampleIndex;
+    private double latencyEwma;
+    private int consecutiveFailures;
+    private long openUntil;
+    private boolean probing;
+
+    Backend(AuthenticationProvider provider) {
+      this.provider = provider;
+    }
+
+    AuthenticationProvider getProvider() {
+      return provider;
+    }
+
+    synchronized double getLatencyEwma() {
+      return latencyEwma;
+    }
+
+    synchronized int getConsecutiveFailures() {
+      return consecutiveFailures;
+    }
+
+    /**
+     * @return the 95th percentile latency in nanoseconds, or -1 if there are no samples yet.
+     */
+    synchronized long getPercentile95() {
+      if (sampleCount == 0) {
+        return -1;
+      }
+
+      long[] sorted = Arrays.copyOf(samples, sampleCount);
+      Arrays.sort(sorted);
+
+      return sorted[(int) Math.ceil(0.95 * sampleCount) - 1];
+    }
+
+    synchronized boolean isAvailable(long now, int failureThreshold) {
+      return (consecutiveFailures < failureThreshold) || isHalfOpen(now, failureThreshold);
+    }
+
+    /**
+     * @return {@code true} if the circuit is open, the configured time has elapsed and there's no
+     * probe in flight.
+     */
+    synchronized boolean isHalfOpen(long now, int failureThreshold) {
+      return (consecutiveFailures >= failureThreshold) && (now - openUntil >= 0) && !probing;
+    }
+
+    /**
+     * @return {@code true} if the circuit was half-open and the caller is now the only one probing
+     * the backend.
+     */
+    synchronized boolean tryStartProbe(long now, int failureThreshold) {
+      if (!isHalfOpen(now, failureThreshold)) {
+        return false;
+      }
+
+      probing = true;
+      return true;
+    }
+
+    synchronized void endProbe() {
+      probing = false;
+    }
+
+    synchronized void recordLatency(long latencyNanos) {
+      samples[sampleIndex] = latencyNanos;
+      sampleIndex = (sampleIndex + 1) % SAMPLES;
+      sampleCount = Math.min(sampleCount + 1, SAMPLES);
+      latencyEwma = (sampleCount == 1) ? latencyNanos : (EWMA_ALPHA * latencyNanos) + ((1 - EWMA_ALPHA) * latencyEwma);
+    }
+
+    synchronized void recordSuccess() {
+      consecutiveFailures = 0;
+      probing = false;
+    }
+
+    synchronized void recordFailure(long now, int failureThreshold, long openCircuitMillis) {
+      consecutiveFailures++;
+      probing = false;
+
+      if (consecutiveFailures >= failureThreshold) {
+        openUntil = now + TimeUnit.MILLISECONDS.toNanos(openCircuitMillis);
+      }
+    }
+  }
+}
@@ -20,8 +20,10 @@ import java.util.Properties;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.support.FileSystemXmlApplicationContext;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.AuthenticationServiceException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.core.GrantedAuthority;
 
 import org.apache.geode.distributed.ConfigurationProperties;
@@ -32,6 +34,9 @@ import org.apache.geode.security.SecurityManager;
 /**
  * Geode {@link SecurityManager} that simply delegates authentication to the
  * configured Spring {@link AuthenticationManager}.
+ * Authenticated principals are tracked by a {@link GeodePermissionIndex}, exposed through JMX,
+ * so permissions can be queried and revoked without re-mapping every user. Just like the spring
+ * context, the index is shared by every initialized instance within the JVM.
  */
 public class SpringSecurityManager implements SecurityManager {
   public static final String SECURITY_CONFIGURATION_XML = ConfigurationProperties.SECURITY_PREFIX + "spring-security-xml";
@@ -39,7 +44,11 @@ public class SpringSecurityManager implements SecurityManager {
   public static final String NO_SECURITY_CONFIGURATION_FOUND_ERROR = "Please set the " + SECURITY_CONFIGURATION_XML + " property.";
   private static final Object LOCK = new Object();
   private static ConfigurableApplicationContext springContext;
+  private static GeodePermissionIndex sharedPermissionIndex;
+  private static int initializedManagers;
   private AuthenticationManager authenticationManager;
+  private GeodePermissionIndex permissionIndex = new GeodePermissionIndex();
+  private boolean initialized;
 
   @SuppressWarnings("unused")
   public SpringSecurityManager() {
@@ -49,6 +58,10 @@ public class SpringSecurityManager implements SecurityManager {
     this.authenticationManager = authenticationManager;
   }
 
+  public GeodePermissionIndex getPermissionIndex() {
+    return permissionIndex;
+  }
+
   @Override
   public void init(Properties securityProps) {
     if (!securityProps.containsKey(SECURITY_CONFIGURATION_XML)) {
@@ -66,24 +79,69 @@ public class SpringSecurityManager implements SecurityManager {
     }
 
     authenticationManager = springContext.getBean(AuthenticationManager.class);
+
+    synchronized (LOCK) {
+      if (!initialized) {
+        if (sharedPermissionIndex == null) {
+          sharedPermissionIndex = new GeodePermissionIndex();
+        }
+
+        if (!sharedPermissionIndex.register()) {
+          throw new IllegalStateException(GeodePermissionIndex.JMX_REGISTRATION_ERROR);
+        }
+
+        initializedManagers++;
+        initialized = true;
+        permissionIndex = sharedPermissionIndex;
+      }
+    }
   }
 
   @Override
   public Object authenticate(Properties credentials) throws AuthenticationFailedException {
     String user = credentials.getProperty(USER_NAME);
     String password = credentials.getProperty(PASSWORD);
-    Authentication authentication = authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(user, password));
+    Authentication authentication;
+
+    try {
+      authentication = authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(user, password));
+    } catch (AuthenticationServiceException serviceException) {
+      // The backend couldn't process the request, says nothing about the principal itself.
+      throw serviceException;
+    } catch (AuthenticationException authenticationException) {
+      permissionIndex.remove(user);
+      throw authenticationException;
+    }
 
     if (authentication == null) {
+      permissionIndex.remove(user);
       throw new AuthenticationFailedException(INVALID_CREDENTIALS_ERROR);
     }
 
+    permissionIndex.update(authentication.getName(), authentication.getAuthorities());
+
     return authentication;
   }
 
   @Override
   public boolean authorize(Object principal, ResourcePermission context) {
     Authentication authentication = (Authentication) principal;
+    if (permissionIndex.isRevoked(context)) {
+      return false;
+    }
+
+    ResourcePermission[] indexedPermissions = permissionIndex.getPermissions(authentication.getName());
+
+    if (indexedPermissions != null) {
+      for (ResourcePermission indexedPermission : indexedPermissions) {
+        if (indexedPermission.implies(context)) {
+          return true;
+        }
+      }
+
+      return false;
+    }
+
     Collection<? extends GrantedAuthority> grantedAuthorities = authentication.getAuthorities();
 
     for (GrantedAuthority grantedAuthority : grantedAuthorities) {
@@ -101,5 +159,15 @@ public class SpringSecurityManager implements SecurityManager {
 
   @Override
   public void close() {
+    synchronized (LOCK) {
+      if (initialized) {
+        initialized = false;
+
+        // Revocations are kept, the index is registered again by the next initialized instance.
+        if (--initializedManagers == 0) {
+          sharedPermissionIndex.unregister();
+        }
+      }
+    }
   }
 }
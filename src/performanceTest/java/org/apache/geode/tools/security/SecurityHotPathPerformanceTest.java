@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.tools.security;
+
+import static org.apache.geode.tools.security.SpringSecurityManager.SECURITY_CONFIGURATION_XML;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.management.ThreadMXBean;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import org.apache.geode.security.ResourcePermission;
+import org.apache.geode.security.SecurityManager;
+
+/**
+ * Guards the security hot path ({@link SpringSecurityManager#authorize(Object, ResourcePermission)}
+ * and {@link GeodeAuthoritiesMapper#mapAuthorities(java.util.Collection)}) against allocation and
+ * contention regressions.
+ * Throughput scaling is only asserted for {@code authorize}, the mapper is bound by allocation
+ * and garbage collection and would fail intermittently on shared hosts.
+ * Only the in-memory spring configuration is used, so it can run anywhere.
+ */
+public class SecurityHotPathPerformanceTest {
+  private static final int WARM_UP_ITERATIONS = 200_000;
+  private static final int MEASURED_ITERATIONS = 1_000_000;
+  // Measured: 0 bytes on JDK 11, 32 bytes on JDK 8 (escape analysis doesn't remove the iterator
+  // allocated by WildcardPermission.implies).
+  private static final double AUTHORIZE_BYTES_PER_CALL = 48;
+  // Measured: ~530 bytes per authority on JDK 11, ~620 bytes per authority on JDK 8.
+  private static final double MAP_AUTHORITIES_BYTES_PER_AUTHORITY = 768;
+  private static final long THROUGHPUT_MEASUREMENT_MILLIS = 500;
+  private static final int THROUGHPUT_RUNS = 3;
+  private static final double MIN_SCALING_EFFICIENCY = 0.5;
+  private static final int MAX_THREADS = Math.min(8, Math.max(2, Runtime.getRuntime().availableProcessors() / 2));
+  private static final ThreadMXBean THREAD_MX_BEAN = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+  private static volatile Object sink;
+  private SpringSecurityManager securityManager;
+  private GeodeAuthoritiesMapper authoritiesMapper;
+  private Object principal;
+  private ResourcePermission permission;
+  private List<GrantedAuthority> authorities;
+
+  /**
+   * Single invocation of the operation under test, the result is returned to avoid dead code
+   * elimination.
+   */
+  private interface Operation {
+    boolean execute();
+  }
+
+  private static long allocatedBytes() {
+    return THREAD_MX_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  /**
+   * @return the bytes allocated by the current thread per invocation of the operation.
+   */
+  private static double allocatedBytesPerCall(Operation operation) {
+    long hits = 0;
+    for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+      hits += operation.execute() ? 1 : 0;
+    }
+
+    // Discount whatever the measurement itself allocates.
+    long baselineStart = allocatedBytes();
+    long baseline = allocatedBytes() - baselineStart;
+
+    long start = allocatedBytes();
+    for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+      hits += operation.execute() ? 1 : 0;
+    }
+    long allocated = allocatedBytes() - start - baseline;
+
+    assertThat(hits).isEqualTo(WARM_UP_ITERATIONS + MEASURED_ITERATIONS);
+    return (double) Math.max(0, allocated) / MEASURED_ITERATIONS;
+  }
+
+  /**
+   * @return the aggregated operations per second achieved by the given amount of threads.
+   */
+  private static double throughput(Operation operation, int threads) throws InterruptedException {
+    CountDownLatch ready = new CountDownLatch(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    AtomicLong operations = new AtomicLong();
+    List<Thread> workers = new ArrayList<>(threads);
+
+    for (int i = 0; i < threads; i++) {
+      Thread worker = new Thread(() -> {
+        long count = 0;
+        ready.countDown();
+
+        try {
+          start.await();
+        } catch (InterruptedException interruptedException) {
+          return;
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(THROUGHPUT_MEASUREMENT_MILLIS);
+        while (System.nanoTime() < deadline) {
+          for (int j = 0; j < 1000; j++) {
+            count += operation.execute() ? 1 : 0;
+          }
+        }
+
+        operations.addAndGet(count);
+      }, "SecurityHotPathWorker-" + i);
+
+      workers.add(worker);
+      worker.start();
+    }
+
+    ready.await();
+    long begin = System.nanoTime();
+    start.countDown();
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    long elapsed = System.nanoTime() - begin;
+
+    return operations.get() / (elapsed / 1e9);
+  }
+
+  /**
+   * @return the best throughput out of several runs, to filter out noise from other processes.
+   */
+  private static double bestThroughput(Operation operation, int threads) throws InterruptedException {
+    double best = 0;
+    for (int i = 0; i < THROUGHPUT_RUNS; i++) {
+      best = Math.max(best, throughput(operation, threads));
+    }
+
+    return best;
+  }
+
+  private static void assertThroughputScales(Operation operation) throws InterruptedException {
+    assumeTrue("Throughput scaling requires more than one processor", Runtime.getRuntime().availableProcessors() > 1);
+
+    // Warm up with all threads, so every measurement runs compiled code.
+    throughput(operation, MAX_THREADS);
+    double singleThreaded = bestThroughput(operation, 1);
+
+    for (int threads = 2; threads <= MAX_THREADS; threads *= 2) {
+      double multiThreaded = bestThroughput(operation, threads);
+      assertThat(multiThreaded)
+          .as("Throughput with %d threads (single threaded: %.0f ops/s)", threads, singleThreaded)
+          .isGreaterThanOrEqualTo(singleThreaded * threads * MIN_SCALING_EFFICIENCY);
+    }
+  }
+
+  @Before
+  public void setUp() {
+    Properties securityProperties = new Properties();
+    securityProperties.setProperty(SECURITY_CONFIGURATION_XML, "classpath:inMemory-security-config.xml");
+    securityManager = new SpringSecurityManager();
+    securityManager.init(securityProperties);
+
+    Properties credentials = new Properties();
+    credentials.setProperty(SecurityManager.USER_NAME, "clusterManager");
+    credentials.setProperty(SecurityManager.PASSWORD, "clusterManagerPassword");
+    principal = securityManager.authenticate(credentials);
+    permission = new ResourcePermission(ResourcePermission.Resource.CLUSTER, ResourcePermission.Operation.MANAGE, ResourcePermission.Target.GATEWAY);
+
+    authoritiesMapper = new GeodeAuthoritiesMapper();
+    authorities = Arrays.asList(
+        new SimpleGrantedAuthority("DATA:READ"),
+        new SimpleGrantedAuthority("DATA:WRITE:RegionA"),
+        new SimpleGrantedAuthority("DATA:WRITE:RegionB:Key1"),
+        new SimpleGrantedAuthority("CLUSTER:MANAGE"));
+
+    assumeTrue("Thread allocated memory measurement not supported", THREAD_MX_BEAN.isThreadAllocatedMemorySupported());
+    THREAD_MX_BEAN.setThreadAllocatedMemoryEnabled(true);
+  }
+
+  @After
+  public void tearDown() {
+    securityManager.close();
+  }
+
+  @Test
+  public void authorizeShouldStayWithinTheAllocationBudgetOnTheHitPath() {
+    assertThat(securityManager.authorize(principal, permission)).isTrue();
+
+    double allocated = allocatedBytesPerCall(() -> securityManager.authorize(principal, permission));
+    assertThat(allocated).as("Bytes allocated per authorize call").isLessThan(AUTHORIZE_BYTES_PER_CALL);
+  }
+
+  @Test
+  public void mapAuthoritiesShouldStayWithinTheAllocationBudget() {
+    double allocated = allocatedBytesPerCall(() -> {
+      Collection<? extends GrantedAuthority> mapped = authoritiesMapper.mapAuthorities(authorities);
+      sink = mapped;
+
+      return mapped.size() == authorities.size();
+    });
+
+    assertThat(allocated)
+        .as("Bytes allocated per mapAuthorities call (%d authorities)", authorities.size())
+        .isLessThanOrEqualTo(authorities.size() * MAP_AUTHORITIES_BYTES_PER_AUTHORITY);
+  }
+
+  @Test
+  public void authorizeThroughputShouldScaleWithThreads() throws InterruptedException {
+    assertThroughputScales(() -> securityManager.authorize(principal, permission));
+  }
+}
@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.tools.security;
+
+import static org.apache.geode.tools.security.GeodeAuthoritiesMapper.INVALID_AUTHORITY_ERROR;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.core.GrantedAuthority;
+
+import org.apache.geode.security.ResourcePermission;
+
+public class GeodePermissionIndexTest {
+  private GeodePermissionIndex permissionIndex;
+
+  private List<GrantedAuthority> authorities(String... authorities) {
+    GeodeAuthoritiesMapper authoritiesMapper = new GeodeAuthoritiesMapper();
+    GrantedAuthority[] grantedAuthorities = new GrantedAuthority[authorities.length];
+
+    for (int i = 0; i < authorities.length; i++) {
+      grantedAuthorities[i] = authoritiesMapper.parseAuthority(authorities[i]);
+    }
+
+    return Arrays.asList(grantedAuthorities);
+  }
+
+  @Before
+  public void setUp() {
+    permissionIndex = new GeodePermissionIndex();
+    permissionIndex.update("clientReader", authorities("DATA:READ"));
+    permissionIndex.update("clientWriter", authorities("DATA:WRITE"));
+    permissionIndex.update("regionWriter", authorities("DATA:WRITE:RegionX"));
+    permissionIndex.update("clusterManager", authorities("CLUSTER:MANAGE", "DATA:READ"));
+  }
+
+  @Test
+  public void updateShouldIgnoreNonGeodeAuthorities() {
+    permissionIndex.update("user", Arrays.asList(mock(GrantedAuthority.class)));
+
+    assertThat(permissionIndex.getPermissions("user")).isEmpty();
+    assertThat(permissionIndex.getPrincipalCount()).isEqualTo(5);
+  }
+
+  @Test
+  public void updateShouldReplacePreviouslyIndexedPermissions() {
+    permissionIndex.update("clientWriter", authorities("DATA:READ"));
+
+    assertThat(permissionIndex.listPrincipals("DATA:WRITE:RegionX")).containsExactly("regionWriter");
+    assertThat(permissionIndex.listPrincipals("DATA:READ")).containsExactly("clientReader", "clientWriter", "clusterManager");
+  }
+
+  @Test
+  public void removeShouldDropThePrincipal() {
+    assertThat(permissionIndex.removePrincipal("clusterManager")).isTrue();
+    assertThat(permissionIndex.removePrincipal("clusterManager")).isFalse();
+
+    assertThat(permissionIndex.getPermissions("clusterManager")).isNull();
+    assertThat(permissionIndex.listPrincipals("CLUSTER:MANAGE")).isEmpty();
+    assertThat(permissionIndex.listPrincipals("DATA:READ")).containsExactly("clientReader");
+    assertThat(permissionIndex.getPrincipalCount()).isEqualTo(3);
+  }
+
+  @Test
+  public void removeIdleShouldOnlyDropPrincipalsNotAuthenticatedRecently() throws Exception {
+    Thread.sleep(50);
+    permissionIndex.update("clusterManager", authorities("CLUSTER:MANAGE"));
+
+    assertThat(permissionIndex.removeIdle(25)).isEqualTo(3);
+    assertThat(permissionIndex.getPrincipalCount()).isEqualTo(1);
+    assertThat(permissionIndex.listPrincipals("CLUSTER:MANAGE")).containsExactly("clusterManager");
+    assertThat(permissionIndex.removeIdlePrincipals(1)).isEqualTo(0);
+  }
+
+  @Test
+  public void listPrincipalsShouldReturnEveryPrincipalWithAnImplyingPermission() {
+    assertThat(permissionIndex.listPrincipals("DATA:WRITE:RegionX")).containsExactly("clientWriter", "regionWriter");
+    assertThat(permissionIndex.listPrincipals("DATA:WRITE:RegionY")).containsExactly("clientWriter");
+    assertThat(permissionIndex.listPrincipals("CLUSTER:MANAGE:GATEWAY")).containsExactly("clusterManager");
+    assertThat(permissionIndex.listPrincipals("CLUSTER:READ")).isEmpty();
+  }
+
+  @Test
+  public void listPrincipalsShouldThrowExceptionForInvalidAuthorities() {
+    assertThatThrownBy(() -> permissionIndex.listPrincipals("UNKNOWN"))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage(INVALID_AUTHORITY_ERROR + "UNKNOWN");
+  }
+
+  @Test
+  public void revokeShouldRemoveThePermissionAndNarrowerOnesFromEveryPrincipal() {
+    assertThat(permissionIndex.revoke("DATA:WRITE")).isEqualTo(2);
+
+    assertThat(permissionIndex.listPrincipals("DATA:WRITE:RegionX")).isEmpty();
+    assertThat(permissionIndex.getPermissions("clientWriter")).isEmpty();
+    assertThat(permissionIndex.getPermissions("regionWriter")).isEmpty();
+    assertThat(permissionIndex.getPermissions("clusterManager")).hasSize(2);
+    assertThat(permissionIndex.getRevokedAuthorities()).hasSize(1);
+  }
+
+  @Test
+  public void revokeShouldApplyToPrincipalsHoldingBroaderPermissions() {
+    permissionIndex.update("clusterAdmin", authorities("CLUSTER:ALL"));
+    permissionIndex.update("superUser", authorities("ALL:ALL:*:*"));
+    assertThat(permissionIndex.listPrincipals("CLUSTER:MANAGE")).containsExactly("clusterAdmin", "clusterManager", "superUser");
+
+    assertThat(permissionIndex.revoke("CLUSTER:MANAGE")).isEqualTo(3);
+    assertThat(permissionIndex.isRevoked(new ResourcePermission("CLUSTER", "MANAGE", "GATEWAY"))).isTrue();
+    assertThat(permissionIndex.listPrincipals("CLUSTER:MANAGE")).isEmpty();
+    assertThat(permissionIndex.listPrincipals("CLUSTER:MANAGE:GATEWAY")).isEmpty();
+    assertThat(permissionIndex.listPrincipals("CLUSTER:READ")).containsExactly("clusterAdmin", "superUser");
+  }
+
+  @Test
+  public void revokeShouldApplyToPrincipalsIndexedAfterwards() {
+    permissionIndex.revoke("CLUSTER:MANAGE");
+    permissionIndex.update("newManager", authorities("CLUSTER:MANAGE", "CLUSTER:READ"));
+
+    assertThat(permissionIndex.listPrincipals("CLUSTER:MANAGE")).isEmpty();
+    assertThat(permissionIndex.getPermissions("newManager"))
+        .containsExactly(new ResourcePermission(ResourcePermission.Resource.CLUSTER, ResourcePermission.Operation.READ));
+  }
+
+  @Test
+  public void restoreShouldRevertThePreviousRevocation() {
+    permissionIndex.revoke("CLUSTER:MANAGE");
+    assertThat(permissionIndex.restore("CLUSTER:MANAGE")).isEqualTo(1);
+    assertThat(permissionIndex.restore("CLUSTER:MANAGE")).isEqualTo(0);
+
+    assertThat(permissionIndex.listPrincipals("CLUSTER:MANAGE")).containsExactly("clusterManager");
+    assertThat(permissionIndex.listAuthorities("clusterManager")).hasSize(2);
+    assertThat(permissionIndex.getRevokedAuthorities()).isEmpty();
+  }
+
+  @Test
+  public void registerShouldExposeTheIndexThroughJmx() throws Exception {
+    MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+    ObjectName objectName = new ObjectName(GeodePermissionIndex.OBJECT_NAME);
+
+    try {
+      assertThat(permissionIndex.register()).isTrue();
+      assertThat(mBeanServer.getAttribute(objectName, "PrincipalCount")).isEqualTo(4);
+      assertThat((String[]) mBeanServer.invoke(objectName, "listPrincipals", new Object[] { "CLUSTER:MANAGE" }, new String[] { String.class.getName() }))
+          .containsExactly("clusterManager");
+    } finally {
+      permissionIndex.unregister();
+    }
+
+    assertThat(mBeanServer.isRegistered(objectName)).isFalse();
+  }
+
+  @Test
+  public void registerAndUnregisterShouldNotAffectIndexesRegisteredByOthers() throws Exception {
+    MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+    ObjectName objectName = new ObjectName(GeodePermissionIndex.OBJECT_NAME);
+    GeodePermissionIndex otherIndex = new GeodePermissionIndex();
+
+    try {
+      assertThat(permissionIndex.register()).isTrue();
+      assertThat(otherIndex.register()).isFalse();
+      assertThat(mBeanServer.getAttribute(objectName, "PrincipalCount")).isEqualTo(4);
+
+      otherIndex.unregister();
+      assertThat(mBeanServer.isRegistered(objectName)).isTrue();
+    } finally {
+      permissionIndex.unregister();
+    }
+
+    assertThat(mBeanServer.isRegistered(objectName)).isFalse();
+  }
+}
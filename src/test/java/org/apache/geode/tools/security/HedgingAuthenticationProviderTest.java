@@ -0,0 +1,352 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.tools.security;
+
+import static org.apache.geode.tools.security.HedgingAuthenticationProvider.NO_BACKENDS_CONFIGURED_ERROR;
+import static org.apache.geode.tools.security.HedgingAuthenticationProvider.TIMEOUT_ERROR;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryListenerConfig;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedSearchRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedSimpleBindRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryOperationInterceptor;
+import com.unboundid.ldif.LDIFReader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.ldap.DefaultSpringSecurityContextSource;
+import org.springframework.security.ldap.authentication.BindAuthenticator;
+import org.springframework.security.ldap.authentication.LdapAuthenticationProvider;
+import org.springframework.security.ldap.userdetails.DefaultLdapAuthoritiesPopulator;
+
+public class HedgingAuthenticationProviderTest {
+  private static final String ROOT = "dc=apache,dc=org";
+  private static final int REPLICAS = 3;
+  private List<InMemoryDirectoryServer> servers;
+  private List<LatencyInjector> injectors;
+  private HedgingAuthenticationProvider hedgingProvider;
+
+  /**
+   * Delays every bind and search request received by the embedded ldap server, counting the
+   * non-anonymous binds (actual user authentication attempts).
+   * The non-anonymous binds can be delayed on their own, to control the latency of a single
+   * authentication attempt regardless of how many operations the provider executes.
+   */
+  private static class LatencyInjector extends InMemoryOperationInterceptor {
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger binds = new AtomicInteger();
+    private volatile long delayMillis;
+    private volatile long userBindDelayMillis;
+
+    private void delay(long millis) {
+      try {
+        release.await(millis, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException interruptedException) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    @Override
+    public void processSimpleBindRequest(InMemoryInterceptedSimpleBindRequest request) {
+      if (!request.getRequest().getBindDN().isEmpty()) {
+        binds.incrementAndGet();
+        delay(delayMillis + userBindDelayMillis);
+      } else {
+        delay(delayMillis);
+      }
+    }
+
+    @Override
+    public void processSearchRequest(InMemoryInterceptedSearchRequest request) {
+      delay(delayMillis);
+    }
+  }
+
+  /**
+   * Provider returning a fixed result for the supported authentication requests.
+   */
+  private static class StubProvider implements AuthenticationProvider {
+    private final AtomicInteger calls = new AtomicInteger();
+    private final boolean supported;
+    private final Authentication result;
+
+    private StubProvider(boolean supported, Authentication result) {
+      this.supported = supported;
+      this.result = result;
+    }
+
+    @Override
+    public Authentication authenticate(Authentication authentication) {
+      calls.incrementAndGet();
+      return result;
+    }
+
+    @Override
+    public boolean supports(Class<?> authentication) {
+      return supported;
+    }
+  }
+
+  private InMemoryDirectoryServer startServer(LatencyInjector injector) throws Exception {
+    InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(ROOT);
+    config.setListenerConfigs(InMemoryListenerConfig.createLDAPConfig("default", 0));
+    config.addInMemoryOperationInterceptor(injector);
+
+    InMemoryDirectoryServer server = new InMemoryDirectoryServer(config);
+    server.add("dn: " + ROOT, "objectClass: top", "objectClass: domain", "dc: apache");
+    server.importFromLDIF(false, new LDIFReader(getClass().getResourceAsStream("/sampleData/users.ldif")));
+    server.startListening();
+
+    return server;
+  }
+
+  private AuthenticationProvider ldapProvider(InMemoryDirectoryServer server) {
+    DefaultSpringSecurityContextSource contextSource = new DefaultSpringSecurityContextSource("ldap://localhost:" + server.getListenPort() + "/" + ROOT);
+    contextSource.afterPropertiesSet();
+
+    BindAuthenticator bindAuthenticator = new BindAuthenticator(contextSource);
+    bindAuthenticator.setUserDnPatterns(new String[] { "uid={0},ou=people" });
+
+    DefaultLdapAuthoritiesPopulator authoritiesPopulator = new DefaultLdapAuthoritiesPopulator(contextSource, "ou=groups");
+    authoritiesPopulator.setGroupSearchFilter("(member={0})");
+    authoritiesPopulator.setRolePrefix("");
+    authoritiesPopulator.setSearchSubtree(true);
+    authoritiesPopulator.setConvertToUpperCase(true);
+
+    LdapAuthenticationProvider ldapProvider = new LdapAuthenticationProvider(bindAuthenticator, authoritiesPopulator);
+    ldapProvider.setAuthoritiesMapper(new GeodeAuthoritiesMapper());
+
+    return ldapProvider;
+  }
+
+  private Authentication authenticate(String user, String password) {
+    return hedgingProvider.authenticate(new UsernamePasswordAuthenticationToken(user, password));
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    servers = new ArrayList<>();
+    injectors = new ArrayList<>();
+    List<AuthenticationProvider> providers = new ArrayList<>();
+
+    for (int i = 0; i < REPLICAS; i++) {
+      LatencyInjector injector = new LatencyInjector();
+      InMemoryDirectoryServer server = startServer(injector);
+
+      injectors.add(injector);
+      servers.add(server);
+      providers.add(ldapProvider(server));
+    }
+
+    hedgingProvider = new HedgingAuthenticationProvider(providers);
+    hedgingProvider.setMaxHedgeDelayMillis(200);
+    hedgingProvider.setTimeoutMillis(2000);
+    hedgingProvider.setFailureThreshold(1);
+  }
+
+  @After
+  public void tearDown() {
+    hedgingProvider.destroy();
+    injectors.forEach(injector -> injector.release.countDown());
+    servers.forEach(server -> server.shutDown(true));
+  }
+
+  @Test
+  public void constructorShouldThrowExceptionWhenThereAreNoBackends() {
+    assertThatThrownBy(() -> new HedgingAuthenticationProvider(Collections.emptyList()))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage(NO_BACKENDS_CONFIGURED_ERROR);
+  }
+
+  @Test
+  public void authenticateShouldReturnMappedAuthoritiesFromBackend() {
+    Authentication authentication = authenticate("clusterManager", "clusterManagerPassword");
+
+    assertThat(authentication.isAuthenticated()).isTrue();
+    assertThat(authentication.getAuthorities())
+        .hasSize(1)
+        .allMatch(authority -> authority instanceof GeodeGrantedAuthority);
+  }
+
+  @Test
+  public void authenticateShouldPropagateBadCredentialsWithoutTryingOtherBackends() {
+    assertThatThrownBy(() -> authenticate("clusterManager", "wrongPassword"))
+        .isInstanceOf(BadCredentialsException.class);
+
+    assertThat(injectors.stream().mapToInt(injector -> injector.binds.get()).sum()).isEqualTo(1);
+  }
+
+  @Test
+  public void authenticateShouldHedgeToAnotherBackendWhenTheFastestOneStalls() {
+    injectors.get(0).delayMillis = 10000;
+
+    long start = System.nanoTime();
+    Authentication authentication = authenticate("clusterManager", "clusterManagerPassword");
+    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    assertThat(authentication.isAuthenticated()).isTrue();
+    assertThat(elapsedMillis).isLessThan(1000);
+    assertThat(injectors.get(0).binds.get()).isEqualTo(1);
+    assertThat(injectors.get(1).binds.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void authenticateShouldNotPenalizeHedgeWhenThePrimaryAnswersJustAfterItFired() {
+    // The primary answers ~300ms in: after the hedge fired (200ms), before its own deadline (400ms).
+    injectors.get(0).userBindDelayMillis = 300;
+    injectors.get(1).delayMillis = 10000;
+
+    assertThat(authenticate("clusterManager", "clusterManagerPassword").isAuthenticated()).isTrue();
+    assertThat(injectors.get(1).binds.get()).isEqualTo(1);
+
+    HedgingAuthenticationProvider.Backend hedge = hedgingProvider.getBackends().get(1);
+    assertThat(hedge.getConsecutiveFailures()).isEqualTo(0);
+    assertThat(hedge.getPercentile95()).isEqualTo(-1);
+    assertThat(hedge.isAvailable(System.nanoTime(), 1)).isTrue();
+    assertThat(hedgingProvider.getBackends().get(0).getConsecutiveFailures()).isEqualTo(0);
+  }
+
+  @Test
+  public void authenticateShouldCircuitBreakStalledBackend() {
+    injectors.get(0).delayMillis = 10000;
+    authenticate("clusterManager", "clusterManagerPassword");
+    assertThat(hedgingProvider.getBackends().get(0).isAvailable(System.nanoTime(), 1)).isFalse();
+
+    for (int i = 0; i < 10; i++) {
+      assertThat(authenticate("clusterReader", "clusterReaderPassword").isAuthenticated()).isTrue();
+    }
+
+    assertThat(injectors.get(0).binds.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void authenticateShouldProbeCircuitBrokenBackendAsPrimaryOnceTheCircuitHalfOpens() throws Exception {
+    hedgingProvider.setOpenCircuitMillis(100);
+    injectors.get(0).delayMillis = 10000;
+    authenticate("clusterManager", "clusterManagerPassword");
+    assertThat(hedgingProvider.getBackends().get(0).isAvailable(System.nanoTime(), 1)).isFalse();
+
+    injectors.get(0).delayMillis = 0;
+    Thread.sleep(150);
+    HedgingAuthenticationProvider.Backend probed = hedgingProvider.getBackends().get(0);
+    assertThat(hedgingProvider.orderedBackends(System.nanoTime(), UsernamePasswordAuthenticationToken.class).get(0)).isSameAs(probed);
+
+    assertThat(authenticate("clusterReader", "clusterReaderPassword").isAuthenticated()).isTrue();
+    assertThat(injectors.get(0).binds.get()).isEqualTo(2);
+    assertThat(probed.getConsecutiveFailures()).isEqualTo(0);
+    assertThat(probed.getPercentile95()).isGreaterThan(0);
+  }
+
+  @Test
+  public void failedProbeShouldOpenTheCircuitAgain() {
+    HedgingAuthenticationProvider.Backend backend = hedgingProvider.getBackends().get(0);
+    backend.recordFailure(System.nanoTime(), 1, 0);
+
+    long now = System.nanoTime();
+    assertThat(backend.tryStartProbe(now, 1)).isTrue();
+    assertThat(backend.tryStartProbe(now, 1)).isFalse();
+    assertThat(backend.isAvailable(now, 1)).isFalse();
+
+    backend.recordFailure(now, 1, 30000);
+    assertThat(backend.isAvailable(System.nanoTime(), 1)).isFalse();
+    assertThat(backend.getConsecutiveFailures()).isEqualTo(2);
+  }
+
+  @Test
+  public void orderedBackendsShouldSortAvailableBackendsByLatencyRegardlessOfPastFailures() {
+    hedgingProvider.setFailureThreshold(3);
+    List<HedgingAuthenticationProvider.Backend> backends = hedgingProvider.getBackends();
+    backends.get(0).recordLatency(TimeUnit.MILLISECONDS.toNanos(50));
+    backends.get(1).recordLatency(TimeUnit.MILLISECONDS.toNanos(10));
+    backends.get(2).recordLatency(TimeUnit.MILLISECONDS.toNanos(30));
+    backends.get(1).recordFailure(System.nanoTime(), 3, 30000);
+
+    assertThat(hedgingProvider.orderedBackends(System.nanoTime(), UsernamePasswordAuthenticationToken.class))
+        .containsExactly(backends.get(1), backends.get(2), backends.get(0));
+  }
+
+  @Test
+  public void authenticateShouldFailOverWhenBackendIsUnreachable() {
+    servers.get(0).shutDown(true);
+
+    assertThat(authenticate("clientWriter", "clientWriterPassword").isAuthenticated()).isTrue();
+    assertThat(hedgingProvider.getBackends().get(0).getConsecutiveFailures()).isEqualTo(1);
+  }
+
+  @Test
+  public void authenticateShouldThrowExceptionWhenNoBackendAnswersBeforeTimeout() {
+    injectors.forEach(injector -> injector.delayMillis = 10000);
+
+    assertThatThrownBy(() -> authenticate("clusterManager", "clusterManagerPassword"))
+        .isInstanceOf(AuthenticationServiceException.class)
+        .hasMessage(TIMEOUT_ERROR + "2000ms");
+  }
+
+  @Test
+  public void hedgeDelayShouldFollowThePercentile95OfTheBackend() {
+    HedgingAuthenticationProvider.Backend backend = hedgingProvider.getBackends().get(2);
+    assertThat(hedgingProvider.hedgeDelayNanos(backend)).isEqualTo(TimeUnit.MILLISECONDS.toNanos(200));
+
+    for (int i = 1; i <= 100; i++) {
+      backend.recordLatency(TimeUnit.MILLISECONDS.toNanos(i));
+    }
+
+    // Only the last 64 samples (37ms to 100ms) are kept.
+    assertThat(hedgingProvider.hedgeDelayNanos(backend)).isEqualTo(TimeUnit.MILLISECONDS.toNanos(97));
+  }
+
+  @Test
+  public void authenticateShouldSkipUnsupportingBackendsAndFailOverOnNullResults() {
+    Authentication expected = new UsernamePasswordAuthenticationToken("user", "password", Collections.emptyList());
+    AuthenticationProvider notHandling = new StubProvider(true, null);
+    AuthenticationProvider notSupporting = new StubProvider(false, new UsernamePasswordAuthenticationToken("other", "password"));
+    AuthenticationProvider handling = new StubProvider(true, expected);
+    HedgingAuthenticationProvider stubbedProvider = new HedgingAuthenticationProvider(notHandling, notSupporting, handling);
+
+    try {
+      assertThat(stubbedProvider.authenticate(new UsernamePasswordAuthenticationToken("user", "password"))).isSameAs(expected);
+      assertThat(((StubProvider) notSupporting).calls.get()).isEqualTo(0);
+      assertThat(stubbedProvider.getBackends().get(0).getConsecutiveFailures()).isEqualTo(0);
+    } finally {
+      stubbedProvider.destroy();
+    }
+  }
+
+  @Test
+  public void authenticateShouldReturnNullWhenNoBackendHandlesTheRequest() {
+    HedgingAuthenticationProvider stubbedProvider = new HedgingAuthenticationProvider(new StubProvider(true, null), new StubProvider(false, null));
+
+    try {
+      assertThat(stubbedProvider.authenticate(new UsernamePasswordAuthenticationToken("user", "password"))).isNull();
+    } finally {
+      stubbedProvider.destroy();
+    }
+  }
+}
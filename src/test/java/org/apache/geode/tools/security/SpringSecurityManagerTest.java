@@ -16,20 +16,29 @@ package org.apache.geode.tools.security;
 
 import static org.apache.geode.tools.security.SpringSecurityManager.INVALID_CREDENTIALS_ERROR;
 import static org.apache.geode.tools.security.SpringSecurityManager.NO_SECURITY_CONFIGURATION_FOUND_ERROR;
+import static org.apache.geode.tools.security.SpringSecurityManager.SECURITY_CONFIGURATION_XML;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.apache.geode.security.SecurityManager.USER_NAME;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.TestingAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
@@ -98,4 +107,115 @@ public class SpringSecurityManagerTest {
 
     assertThat(securityManager.authorize(authentication, new ResourcePermission("CLUSTER", "MANAGE", "GATEWAY"))).isTrue();
   }
+
+  @Test
+  public void authenticateShouldIndexTheAuthenticatedPrincipal() {
+    List<GrantedAuthority> grantedAuthorityList = new ArrayList<>();
+    grantedAuthorityList.add(new GeodeGrantedAuthority("DATA", "WRITE", "RegionX", "*"));
+    Authentication authentication = new TestingAuthenticationToken("user", "password", grantedAuthorityList);
+    doReturn(authentication).when(mockManager).authenticate(any());
+
+    securityManager.authenticate(new Properties());
+    assertThat(securityManager.getPermissionIndex().listPrincipals("DATA:WRITE:RegionX")).containsExactly("user");
+  }
+
+  @Test
+  public void authorizeShouldReturnFalseIfTheGeodePermissionGrantedHasBeenRevoked() {
+    List<GrantedAuthority> grantedAuthorityList = new ArrayList<>();
+    grantedAuthorityList.add(new GeodeGrantedAuthority("CLUSTER", "MANAGE", "*", "*"));
+    Authentication authentication = new TestingAuthenticationToken("user", "password", grantedAuthorityList);
+    doReturn(authentication).when(mockManager).authenticate(any());
+
+    Object principal = securityManager.authenticate(new Properties());
+    assertThat(securityManager.authorize(principal, new ResourcePermission("CLUSTER", "MANAGE", "GATEWAY"))).isTrue();
+
+    securityManager.getPermissionIndex().revoke("CLUSTER:MANAGE");
+    assertThat(securityManager.authorize(principal, new ResourcePermission("CLUSTER", "MANAGE", "GATEWAY"))).isFalse();
+  }
+
+  @Test
+  public void authorizeShouldReturnFalseIfTheRequestedPermissionHasBeenRevokedFromBroaderResourcePermissions() {
+    List<GrantedAuthority> grantedAuthorityList = new ArrayList<>();
+    grantedAuthorityList.add(new GeodeGrantedAuthority("CLUSTER", "ALL", "*", "*"));
+    Authentication authentication = new TestingAuthenticationToken("user", "password", grantedAuthorityList);
+    doReturn(authentication).when(mockManager).authenticate(any());
+
+    Object principal = securityManager.authenticate(new Properties());
+    assertThat(securityManager.authorize(principal, new ResourcePermission("CLUSTER", "MANAGE", "GATEWAY"))).isTrue();
+    securityManager.getPermissionIndex().revoke("CLUSTER:MANAGE");
+
+    assertThat(securityManager.authorize(principal, new ResourcePermission("CLUSTER", "MANAGE", "GATEWAY"))).isFalse();
+    assertThat(securityManager.authorize(principal, new ResourcePermission("CLUSTER", "READ"))).isTrue();
+    assertThat(securityManager.authorize(principal, new ResourcePermission("DATA", "WRITE", "RegionX"))).isFalse();
+  }
+
+  @Test
+  public void authorizeShouldReturnFalseIfTheRequestedPermissionHasBeenRevokedFromSuperUsers() {
+    List<GrantedAuthority> grantedAuthorityList = new ArrayList<>();
+    grantedAuthorityList.add(new GeodeGrantedAuthority("ALL", "ALL", "*", "*"));
+    Authentication authentication = new TestingAuthenticationToken("user", "password", grantedAuthorityList);
+    doReturn(authentication).when(mockManager).authenticate(any());
+
+    Object principal = securityManager.authenticate(new Properties());
+    assertThat(securityManager.authorize(principal, new ResourcePermission("CLUSTER", "MANAGE", "GATEWAY"))).isTrue();
+    securityManager.getPermissionIndex().revoke("CLUSTER:MANAGE");
+
+    assertThat(securityManager.authorize(principal, new ResourcePermission("CLUSTER", "MANAGE", "GATEWAY"))).isFalse();
+    assertThat(securityManager.authorize(principal, new ResourcePermission("CLUSTER", "READ"))).isTrue();
+    assertThat(securityManager.authorize(principal, new ResourcePermission("DATA", "WRITE", "RegionX"))).isTrue();
+  }
+
+  @Test
+  public void authorizeShouldReturnFalseIfTheGeodePermissionGrantedHasBeenRevokedForNonIndexedPrincipals() {
+    List<GrantedAuthority> grantedAuthorityList = new ArrayList<>();
+    grantedAuthorityList.add(new GeodeGrantedAuthority("CLUSTER", "MANAGE", "*", "*"));
+    Authentication authentication = new TestingAuthenticationToken("user", "password", grantedAuthorityList);
+    securityManager.getPermissionIndex().revoke("CLUSTER:MANAGE");
+
+    assertThat(securityManager.getPermissionIndex().getPermissions("user")).isNull();
+    assertThat(securityManager.authorize(authentication, new ResourcePermission("CLUSTER", "MANAGE", "GATEWAY"))).isFalse();
+  }
+
+  @Test
+  public void authenticateShouldRemoveThePrincipalFromTheIndexWhenReAuthenticationIsRejected() {
+    Authentication authentication = new TestingAuthenticationToken("user", "password", new ArrayList<>());
+    doReturn(authentication).when(mockManager).authenticate(any());
+    Properties credentials = new Properties();
+    credentials.setProperty(USER_NAME, "user");
+    securityManager.authenticate(credentials);
+    assertThat(securityManager.getPermissionIndex().getPermissions("user")).isNotNull();
+
+    doThrow(new AuthenticationServiceException("Backend down")).when(mockManager).authenticate(any());
+    assertThatThrownBy(() -> securityManager.authenticate(credentials)).isInstanceOf(AuthenticationServiceException.class);
+    assertThat(securityManager.getPermissionIndex().getPermissions("user")).isNotNull();
+
+    doThrow(new BadCredentialsException("Bad credentials")).when(mockManager).authenticate(any());
+    assertThatThrownBy(() -> securityManager.authenticate(credentials)).isInstanceOf(BadCredentialsException.class);
+    assertThat(securityManager.getPermissionIndex().getPermissions("user")).isNull();
+  }
+
+  @Test
+  public void initializedManagersShouldShareTheRegisteredPermissionIndex() throws Exception {
+    MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+    ObjectName objectName = new ObjectName(GeodePermissionIndex.OBJECT_NAME);
+    Properties securityProperties = new Properties();
+    securityProperties.setProperty(SECURITY_CONFIGURATION_XML, "classpath:inMemory-security-config.xml");
+    SpringSecurityManager locatorManager = new SpringSecurityManager();
+    SpringSecurityManager serverManager = new SpringSecurityManager();
+
+    try {
+      locatorManager.init(securityProperties);
+      serverManager.init(securityProperties);
+      assertThat(serverManager.getPermissionIndex()).isSameAs(locatorManager.getPermissionIndex());
+      assertThat(mBeanServer.isRegistered(objectName)).isTrue();
+
+      locatorManager.close();
+      assertThat(mBeanServer.isRegistered(objectName)).isTrue();
+    } finally {
+      locatorManager.close();
+      serverManager.close();
+    }
+
+    assertThat(mBeanServer.isRegistered(objectName)).isFalse();
+  }
 }